@@ -0,0 +1,253 @@
+package com.example.videochat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.webrtc.DataChannel;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaConstraints;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpReceiver;
+import org.webrtc.SdpObserver;
+import org.webrtc.SessionDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Throughput and latency benchmark for DataChannelMessenger over a loopback
+// pair of PeerConnections in the same process. Results are logged under
+// the DataChannelBenchmark tag.
+@RunWith(AndroidJUnit4.class)
+public class DataChannelLoopbackBenchmarkTest {
+
+    private static final String TAG = "DataChannelBenchmark";
+
+    private static final int THROUGHPUT_MESSAGES = 5000;
+    private static final int THROUGHPUT_MESSAGE_SIZE = 1024;
+    // Keeps the amount in flight below the messenger's send queue limit.
+    private static final int THROUGHPUT_WINDOW = 256;
+    private static final int LATENCY_PINGS = 200;
+    private static final long PING_TIMEOUT_MS = 1000;
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final long DISPOSE_TIMEOUT_MS = 5000;
+
+    private PeerConnectionFactory factory;
+    private final Peer sender = new Peer();
+    private final Peer receiver = new Peer();
+    private DataChannelMessenger senderMessenger;
+    private DataChannelMessenger receiverMessenger;
+
+    private final CountDownLatch opened = new CountDownLatch(2);
+    private final AtomicInteger receivedMessages = new AtomicInteger();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final Semaphore window = new Semaphore(THROUGHPUT_WINDOW);
+    private final CountDownLatch throughputDone = new CountDownLatch(THROUGHPUT_MESSAGES);
+    // Each entry is {pingId, rttNanos}
+    private final BlockingQueue<long[]> pongs = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        PeerConnectionFactory.initialize(
+                PeerConnectionFactory.InitializationOptions.builder(context).createInitializationOptions());
+        factory = PeerConnectionFactory.builder().createPeerConnectionFactory();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        // The messengers release their channels on their own threads, which
+        // must finish before the peer connections and factory go away.
+        if (senderMessenger != null) senderMessenger.dispose();
+        if (receiverMessenger != null) receiverMessenger.dispose();
+        if (senderMessenger != null) assertTrue(senderMessenger.awaitDisposed(DISPOSE_TIMEOUT_MS));
+        if (receiverMessenger != null) assertTrue(receiverMessenger.awaitDisposed(DISPOSE_TIMEOUT_MS));
+        if (sender.connection != null) sender.connection.dispose();
+        if (receiver.connection != null) receiver.connection.dispose();
+        if (factory != null) factory.dispose();
+    }
+
+    @Test
+    public void loopbackThroughputAndLatency() throws InterruptedException {
+        connect();
+        assertTrue("Data channels did not open", opened.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // Throughput
+        char[] chars = new char[THROUGHPUT_MESSAGE_SIZE];
+        Arrays.fill(chars, 'x');
+        String message = new String(chars);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < THROUGHPUT_MESSAGES; i++) {
+            assertTrue("Send window stalled", window.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            senderMessenger.sendText(message);
+        }
+        assertTrue("Throughput run timed out after " + receivedMessages.get() + " messages",
+                throughputDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double throughputKbps = receivedBytes.get() * 8 / 1000.0 / seconds;
+        double messagesPerSecond = receivedMessages.get() / seconds;
+
+        // Latency
+        long[] rtts = new long[LATENCY_PINGS];
+        int count = 0;
+        for (int i = 0; i < LATENCY_PINGS; i++) {
+            long rtt = awaitPong(senderMessenger.ping());
+            if (rtt > 0) rtts[count++] = rtt;
+        }
+        assertTrue("No pongs received", count > 0);
+        Arrays.sort(rtts, 0, count);
+        double rttMedianMs = rtts[count / 2] / 1e6;
+        double rttP95Ms = rtts[Math.min(count - 1, (int) (count * 0.95))] / 1e6;
+
+        Log.d(TAG, String.format("throughput=%.1f kbps (%.0f msg/s), rtt median=%.2f ms, p95=%.2f ms (%d/%d pongs)",
+                throughputKbps, messagesPerSecond, rttMedianMs, rttP95Ms, count, LATENCY_PINGS));
+
+        assertEquals(THROUGHPUT_MESSAGES, receivedMessages.get());
+        assertTrue(throughputKbps > 0);
+        assertTrue(rttMedianMs > 0);
+    }
+
+    // Returns the RTT for the given ping, or -1 on timeout. Pongs for earlier
+    // pings that already timed out are discarded.
+    private long awaitPong(long pingId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PING_TIMEOUT_MS;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            long[] pong = pongs.poll(remaining, TimeUnit.MILLISECONDS);
+            if (pong == null) break;
+            if (pong[0] == pingId) return pong[1];
+        }
+        return -1;
+    }
+
+    private void connect() {
+        PeerConnection.RTCConfiguration rtcConfig = new PeerConnection.RTCConfiguration(new ArrayList<>());
+        rtcConfig.sdpSemantics = PeerConnection.SdpSemantics.UNIFIED_PLAN;
+
+        sender.connection = factory.createPeerConnection(rtcConfig, new LoopbackObserver(receiver));
+        receiver.connection = factory.createPeerConnection(rtcConfig, new LoopbackObserver(sender));
+        PeerConnection senderConnection = sender.connection;
+        PeerConnection receiverConnection = receiver.connection;
+
+        senderMessenger = DataChannelMessenger.create(senderConnection, new BenchmarkListener() {
+            @Override
+            public void onRoundTrip(long pingId, long rttNanos) {
+                pongs.add(new long[]{pingId, rttNanos});
+            }
+        });
+        receiverMessenger = DataChannelMessenger.create(receiverConnection, new BenchmarkListener() {
+            @Override
+            public void onTextMessage(String text) {
+                receivedBytes.addAndGet(text.length());
+                receivedMessages.incrementAndGet();
+                window.release();
+                throughputDone.countDown();
+            }
+        });
+
+        senderConnection.createOffer(new SimpleSdpObserver() {
+            @Override
+            public void onCreateSuccess(SessionDescription offer) {
+                senderConnection.setLocalDescription(new SimpleSdpObserver(), offer);
+                receiverConnection.setRemoteDescription(new SimpleSdpObserver() {
+                    @Override
+                    public void onSetSuccess() {
+                        receiver.onRemoteDescriptionSet();
+                        receiverConnection.createAnswer(new SimpleSdpObserver() {
+                            @Override
+                            public void onCreateSuccess(SessionDescription answer) {
+                                receiverConnection.setLocalDescription(new SimpleSdpObserver(), answer);
+                                senderConnection.setRemoteDescription(new SimpleSdpObserver() {
+                                    @Override
+                                    public void onSetSuccess() {
+                                        sender.onRemoteDescriptionSet();
+                                    }
+                                }, answer);
+                            }
+                        }, new MediaConstraints());
+                    }
+                }, offer);
+            }
+        }, new MediaConstraints());
+    }
+
+    // Holds back ICE candidates until the remote description is set, since
+    // addIceCandidate() drops them before that.
+    private static class Peer {
+        volatile PeerConnection connection;
+        private final List<IceCandidate> pendingCandidates = new ArrayList<>();
+        private boolean remoteDescriptionSet = false;
+
+        synchronized void addIceCandidate(IceCandidate candidate) {
+            if (remoteDescriptionSet) {
+                connection.addIceCandidate(candidate);
+            } else {
+                pendingCandidates.add(candidate);
+            }
+        }
+
+        synchronized void onRemoteDescriptionSet() {
+            remoteDescriptionSet = true;
+            for (IceCandidate candidate : pendingCandidates) {
+                connection.addIceCandidate(candidate);
+            }
+            pendingCandidates.clear();
+        }
+    }
+
+    private static class LoopbackObserver implements PeerConnection.Observer {
+        private final Peer remote;
+
+        LoopbackObserver(Peer remote) {
+            this.remote = remote;
+        }
+
+        @Override public void onIceCandidate(IceCandidate iceCandidate) { remote.addIceCandidate(iceCandidate); }
+        @Override public void onAddTrack(RtpReceiver rtpReceiver, MediaStream[] mediaStreams) {}
+        @Override public void onDataChannel(DataChannel dataChannel) {}
+        @Override public void onConnectionChange(PeerConnection.PeerConnectionState newState) {}
+        @Override public void onSignalingChange(PeerConnection.SignalingState signalingState) {}
+        @Override public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {}
+        @Override public void onIceConnectionReceivingChange(boolean b) {}
+        @Override public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {}
+        @Override public void onIceCandidatesRemoved(IceCandidate[] iceCandidates) {}
+        @Override public void onRemoveStream(MediaStream mediaStream) {}
+        @Override public void onRenegotiationNeeded() {}
+        @Override public void onAddStream(MediaStream stream) {}
+    }
+
+    private class BenchmarkListener implements DataChannelMessenger.Listener {
+        @Override public void onOpen() { opened.countDown(); }
+        @Override public void onTextMessage(String text) {}
+        @Override public void onReaction(int reaction) {}
+        @Override public void onBye() {}
+        @Override public void onRoundTrip(long pingId, long rttNanos) {}
+    }
+
+    private static class SimpleSdpObserver implements SdpObserver {
+        @Override public void onCreateSuccess(SessionDescription sessionDescription) {}
+        @Override public void onSetSuccess() {}
+        @Override public void onCreateFailure(String s) {}
+        @Override public void onSetFailure(String s) {}
+    }
+}
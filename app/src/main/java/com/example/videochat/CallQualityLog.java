@@ -0,0 +1,96 @@
+package com.example.videochat;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.core.content.FileProvider;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Per-call quality summaries, one JSON object per line in
+// files/call_quality/call_quality.jsonl. Writes happen on a background
+// thread. Once the file passes MAX_FILE_BYTES it is rotated to
+// call_quality.1.jsonl, so at most two files are kept.
+public class CallQualityLog {
+
+    private static final String TAG = "CallQualityLog";
+
+    private static final String DIR = "call_quality";
+    private static final String FILE_NAME = "call_quality.jsonl";
+    private static final String ROTATED_FILE_NAME = "call_quality.1.jsonl";
+    private static final long MAX_FILE_BYTES = 256 * 1024;
+
+    // Shared so writes from successive activities stay ordered
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Context context;
+    private final File dir;
+
+    public CallQualityLog(Context context) {
+        this.context = context.getApplicationContext();
+        this.dir = new File(this.context.getFilesDir(), DIR);
+    }
+
+    public File getFile() {
+        return new File(dir, FILE_NAME);
+    }
+
+    public void append(JSONObject summary) {
+        String line = summary.toString();
+        executor.execute(() -> {
+            if (!dir.exists() && !dir.mkdirs()) {
+                Log.e(TAG, "Failed to create " + dir);
+                return;
+            }
+            File file = getFile();
+            if (file.length() > MAX_FILE_BYTES) {
+                File rotated = new File(dir, ROTATED_FILE_NAME);
+                if (rotated.exists() && !rotated.delete()) {
+                    Log.w(TAG, "Failed to delete " + rotated);
+                }
+                if (!file.renameTo(rotated)) {
+                    Log.w(TAG, "Failed to rotate " + file);
+                }
+            }
+            try (FileWriter writer = new FileWriter(file, true)) {
+                writer.write(line);
+                writer.write('\n');
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write call quality summary", e);
+            }
+        });
+    }
+
+    // Share sheet for the log, including the rotated file if there is one,
+    // or null if nothing has been logged yet.
+    public Intent createShareIntent() {
+        ArrayList<Uri> uris = new ArrayList<>();
+        for (File file : new File[]{new File(dir, ROTATED_FILE_NAME), getFile()}) {
+            if (file.exists()) {
+                uris.add(FileProvider.getUriForFile(context, context.getPackageName() + ".fileprovider", file));
+            }
+        }
+        if (uris.isEmpty()) return null;
+
+        Intent intent;
+        if (uris.size() == 1) {
+            intent = new Intent(Intent.ACTION_SEND);
+            intent.putExtra(Intent.EXTRA_STREAM, uris.get(0));
+        } else {
+            intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+            intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
+        }
+        intent.setType("application/json");
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return Intent.createChooser(intent, "Share call quality log");
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.videochat;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import org.webrtc.DataChannel;
+import org.webrtc.PeerConnection;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Peer-to-peer messaging over a negotiated DataChannel.
+// Wire format: each DataChannel buffer carries one or more records
+//   [type: u8][length: u16 big-endian][payload: length bytes]
+// Small messages are batched into a single buffer, and sends are held back
+// while bufferedAmount() is above HIGH_WATERMARK. A second, unordered channel
+// carries the bye so it doesn't queue behind buffered messages.
+public class DataChannelMessenger {
+
+    private static final String TAG = "DataChannelMessenger";
+
+    public static final String LABEL = "messages";
+    public static final int CHANNEL_ID = 0;
+    public static final String CONTROL_LABEL = "control";
+    public static final int CONTROL_CHANNEL_ID = 1;
+
+    static final byte TYPE_TEXT = 1;
+    static final byte TYPE_REACTION = 2;
+    static final byte TYPE_BYE = 3;
+    static final byte TYPE_PING = 4;
+    static final byte TYPE_PONG = 5;
+
+    private static final int RECORD_HEADER_SIZE = 3;
+    public static final int MAX_PAYLOAD_SIZE = 0xFFFF;
+    private static final int MAX_BATCH_SIZE = 16 * 1024;
+    private static final long BATCH_DELAY_MS = 5;
+
+    private static final long HIGH_WATERMARK = 256 * 1024;
+    private static final long LOW_WATERMARK = 64 * 1024;
+    private static final long MAX_QUEUED_BYTES = 1024 * 1024;
+
+    // All callbacks run on the messenger's own thread, never on the main
+    // thread or a WebRTC thread, and are delivered in the order received.
+    public interface Listener {
+        void onOpen();
+        void onTextMessage(String text);
+        void onReaction(int reaction);
+        void onBye();
+        // pingId is the value returned by the matching ping() call
+        void onRoundTrip(long pingId, long rttNanos);
+    }
+
+    private final DataChannel dataChannel;
+    private final DataChannel controlChannel;
+    private final Listener listener;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    // Everything below is only touched on the messenger thread.
+    private final ByteBuffer batch = ByteBuffer.allocate(MAX_BATCH_SIZE);
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    private long queuedBytes = 0;
+    private boolean flushScheduled = false;
+    private boolean paused = false;
+    private volatile boolean disposed = false;
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private final Runnable flushRunnable = () -> {
+        flushScheduled = false;
+        flushBatch();
+        drainQueue();
+    };
+
+    // Both peers must call this before creating the offer/answer, so the
+    // channel is part of the SDP without waiting for onDataChannel.
+    public static DataChannelMessenger create(PeerConnection peerConnection, Listener listener) {
+        DataChannel.Init init = new DataChannel.Init();
+        init.negotiated = true;
+        init.id = CHANNEL_ID;
+        init.ordered = true;
+        DataChannel dataChannel = peerConnection.createDataChannel(LABEL, init);
+
+        DataChannel.Init controlInit = new DataChannel.Init();
+        controlInit.negotiated = true;
+        controlInit.id = CONTROL_CHANNEL_ID;
+        controlInit.ordered = false;
+        DataChannel controlChannel = peerConnection.createDataChannel(CONTROL_LABEL, controlInit);
+
+        if (dataChannel == null || controlChannel == null) {
+            Log.e(TAG, "Failed to create data channels");
+            if (dataChannel != null) dataChannel.dispose();
+            if (controlChannel != null) controlChannel.dispose();
+            return null;
+        }
+        return new DataChannelMessenger(dataChannel, controlChannel, listener);
+    }
+
+    private DataChannelMessenger(DataChannel dataChannel, DataChannel controlChannel, Listener listener) {
+        this.dataChannel = dataChannel;
+        this.controlChannel = controlChannel;
+        this.listener = listener;
+        this.thread = new HandlerThread("DataChannelThread");
+        this.thread.start();
+        this.handler = new Handler(thread.getLooper());
+
+        dataChannel.registerObserver(new DataChannel.Observer() {
+            @Override
+            public void onBufferedAmountChange(long previousAmount) {
+                handler.post(DataChannelMessenger.this::drainQueue);
+            }
+
+            @Override
+            public void onStateChange() {
+                if (dataChannel.state() == DataChannel.State.OPEN) {
+                    Log.d(TAG, "Data channel open");
+                    handler.post(() -> {
+                        drainQueue();
+                        listener.onOpen();
+                    });
+                }
+            }
+
+            @Override
+            public void onMessage(DataChannel.Buffer buffer) {
+                // The buffer is only valid for the duration of this callback.
+                if (buffer.binary) {
+                    parseFrame(buffer.data);
+                }
+            }
+        });
+
+        controlChannel.registerObserver(new DataChannel.Observer() {
+            @Override public void onBufferedAmountChange(long previousAmount) {}
+            @Override public void onStateChange() {}
+            @Override
+            public void onMessage(DataChannel.Buffer buffer) {
+                if (buffer.binary) {
+                    parseFrame(buffer.data);
+                }
+            }
+        });
+    }
+
+    public boolean isOpen() {
+        return !disposed && dataChannel.state() == DataChannel.State.OPEN;
+    }
+
+    public void sendText(String text) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        if (payload.length > MAX_PAYLOAD_SIZE) {
+            Log.w(TAG, "Dropping text message of " + payload.length + " bytes");
+            return;
+        }
+        handler.post(() -> enqueue(TYPE_TEXT, payload, false));
+    }
+
+    public void sendReaction(int reaction) {
+        byte[] payload = ByteBuffer.allocate(4).putInt(reaction).array();
+        handler.post(() -> enqueue(TYPE_REACTION, payload, false));
+    }
+
+    // Returns an id for this ping, passed back to onRoundTrip with its pong.
+    public long ping() {
+        long sentNanos = System.nanoTime();
+        byte[] payload = ByteBuffer.allocate(8).putLong(sentNanos).array();
+        handler.post(() -> enqueue(TYPE_PING, payload, true));
+        return sentNanos;
+    }
+
+    // Sent on the unordered control channel, so it skips both the messenger's
+    // own queue and whatever is already buffered on the message channel, and
+    // the partner learns about a skip within one RTT.
+    public void sendBye() {
+        if (disposed || controlChannel.state() != DataChannel.State.OPEN) return;
+        ByteBuffer frame = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        frame.put(TYPE_BYE).putShort((short) 0);
+        frame.flip();
+        controlChannel.send(new DataChannel.Buffer(frame, true));
+        Log.d(TAG, "Sent bye");
+    }
+
+    public void dispose() {
+        disposed = true;
+        handler.post(() -> {
+            handler.removeCallbacks(flushRunnable);
+            queue.clear();
+            queuedBytes = 0;
+            dataChannel.unregisterObserver();
+            dataChannel.close();
+            dataChannel.dispose();
+            controlChannel.unregisterObserver();
+            controlChannel.close();
+            controlChannel.dispose();
+            thread.quitSafely();
+            released.countDown();
+        });
+    }
+
+    // Waits until dispose() has released the channels, after which the
+    // PeerConnection can be disposed safely.
+    public boolean awaitDisposed(long timeoutMs) throws InterruptedException {
+        return released.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void enqueue(byte type, byte[] payload, boolean urgent) {
+        if (disposed) return;
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (queuedBytes + batch.position() + recordSize > MAX_QUEUED_BYTES) {
+            Log.w(TAG, "Send queue full, dropping message of type " + type);
+            return;
+        }
+        if (batch.remaining() < recordSize) {
+            flushBatch();
+        }
+        if (recordSize > batch.capacity()) {
+            // Too large to batch, send as a frame on its own.
+            ByteBuffer frame = ByteBuffer.allocate(recordSize);
+            writeRecord(frame, type, payload);
+            frame.flip();
+            queue.add(frame);
+            queuedBytes += recordSize;
+        } else {
+            writeRecord(batch, type, payload);
+        }
+
+        if (urgent) {
+            handler.removeCallbacks(flushRunnable);
+            flushRunnable.run();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, BATCH_DELAY_MS);
+        }
+    }
+
+    private static void writeRecord(ByteBuffer target, byte type, byte[] payload) {
+        target.put(type);
+        target.putShort((short) payload.length);
+        target.put(payload);
+    }
+
+    private void flushBatch() {
+        if (batch.position() == 0) return;
+        batch.flip();
+        ByteBuffer frame = ByteBuffer.allocate(batch.remaining());
+        frame.put(batch);
+        frame.flip();
+        batch.clear();
+        queue.add(frame);
+        queuedBytes += frame.remaining();
+    }
+
+    private void drainQueue() {
+        if (disposed || !isOpen()) return;
+        // Once over the high watermark, wait for onBufferedAmountChange to
+        // bring the channel back under the low watermark before resuming.
+        long buffered = dataChannel.bufferedAmount();
+        if (paused && buffered > LOW_WATERMARK) return;
+        paused = false;
+        while (!queue.isEmpty()) {
+            if (dataChannel.bufferedAmount() >= HIGH_WATERMARK) {
+                paused = true;
+                return;
+            }
+            // Only dequeue once the send succeeded. send() consumes the buffer
+            // it is given, so hand it a duplicate.
+            ByteBuffer frame = queue.peek();
+            if (!dataChannel.send(new DataChannel.Buffer(frame.duplicate(), true))) {
+                // Retried from the next onBufferedAmountChange
+                Log.w(TAG, "Data channel send failed, " + queue.size() + " frames pending");
+                paused = true;
+                return;
+            }
+            queue.poll();
+            queuedBytes -= frame.remaining();
+        }
+    }
+
+    private void parseFrame(ByteBuffer data) {
+        while (data.remaining() >= RECORD_HEADER_SIZE) {
+            byte type = data.get();
+            int length = data.getShort() & 0xFFFF;
+            if (data.remaining() < length) {
+                Log.w(TAG, "Truncated record of type " + type);
+                return;
+            }
+            int end = data.position() + length;
+            switch (type) {
+                case TYPE_TEXT: {
+                    byte[] bytes = new byte[length];
+                    data.get(bytes);
+                    String text = new String(bytes, StandardCharsets.UTF_8);
+                    handler.post(() -> listener.onTextMessage(text));
+                    break;
+                }
+                case TYPE_REACTION:
+                    if (length >= 4) {
+                        int reaction = data.getInt(data.position());
+                        handler.post(() -> listener.onReaction(reaction));
+                    }
+                    break;
+                case TYPE_BYE:
+                    Log.d(TAG, "Received bye");
+                    handler.post(listener::onBye);
+                    break;
+                case TYPE_PING: {
+                    byte[] echo = new byte[length];
+                    data.get(echo);
+                    handler.post(() -> enqueue(TYPE_PONG, echo, true));
+                    break;
+                }
+                case TYPE_PONG:
+                    if (length >= 8) {
+                        long sentNanos = data.getLong(data.position());
+                        long rttNanos = System.nanoTime() - sentNanos;
+                        handler.post(() -> listener.onRoundTrip(sentNanos, rttNanos));
+                    }
+                    break;
+                default:
+                    Log.w(TAG, "Unknown record type " + type);
+                    break;
+            }
+            data.position(end);
+        }
+    }
+}
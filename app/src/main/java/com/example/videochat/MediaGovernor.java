@@ -0,0 +1,186 @@
+package com.example.videochat;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.webrtc.RtpParameters;
+import org.webrtc.RtpSender;
+import org.webrtc.SurfaceViewRenderer;
+import org.webrtc.VideoSource;
+
+// Feeds thermal status, battery state and power save mode into
+// MediaGovernorPolicy and applies the resulting profile to the video source,
+// the local preview and the video encoder. All methods must be called on the
+// main thread.
+//
+// The camera is never restarted here: each call starts capture at
+// getCaptureFps(), and level changes during a call only drop frames with
+// VideoSource.adaptOutputFormat().
+public class MediaGovernor {
+
+    private static final String TAG = "MediaGovernor";
+
+    private final Context context;
+    private final PowerManager powerManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final MediaGovernorPolicy policy = new MediaGovernorPolicy();
+
+    private final int captureWidth;
+    private final int captureHeight;
+
+    private VideoSource videoSource;
+    private SurfaceViewRenderer localVideoView;
+    private RtpSender videoSender;
+
+    private int thermalStatus = MediaGovernorPolicy.THERMAL_NONE;
+    private int batteryPercent = -1;
+    private boolean charging = false;
+    private int appliedLevel = -1;
+    private boolean started = false;
+
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+            batteryPercent = (level >= 0 && scale > 0) ? level * 100 / scale : -1;
+            charging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+            evaluate();
+        }
+    };
+
+    private final BroadcastReceiver powerSaveReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            evaluate();
+        }
+    };
+
+    // Fires when the policy's next step or restore interval runs out
+    private final Runnable pendingEvaluate = this::evaluate;
+
+    public MediaGovernor(Context context, int captureWidth, int captureHeight) {
+        this.context = context.getApplicationContext();
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.captureWidth = captureWidth;
+        this.captureHeight = captureHeight;
+    }
+
+    public void start() {
+        if (started) return;
+        started = true;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null) {
+            thermalStatus = powerManager.getCurrentThermalStatus();
+            thermalListener = status -> {
+                thermalStatus = status;
+                Log.d(TAG, "Thermal status: " + status);
+                evaluate();
+            };
+            powerManager.addThermalStatusListener(context.getMainExecutor(), thermalListener);
+        }
+        // Sticky broadcast, so the current battery state is delivered right away
+        context.registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        context.registerReceiver(powerSaveReceiver, new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+        evaluate();
+    }
+
+    public void stop() {
+        if (!started) return;
+        started = false;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null && thermalListener != null) {
+            powerManager.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
+        context.unregisterReceiver(batteryReceiver);
+        context.unregisterReceiver(powerSaveReceiver);
+        handler.removeCallbacks(pendingEvaluate);
+        detach();
+    }
+
+    // Frame rate to start capture at for a new call.
+    public int getCaptureFps() {
+        return policy.getProfile().captureFps;
+    }
+
+    // Called whenever the activity recreates its capturer / peer connection.
+    // Capture must already have been started at getCaptureFps().
+    public void attach(VideoSource videoSource, SurfaceViewRenderer localVideoView, RtpSender videoSender) {
+        this.videoSource = videoSource;
+        this.localVideoView = localVideoView;
+        this.videoSender = videoSender;
+        int level = policy.getLevel();
+        applyPreviewAndEncoder(level, true);
+        appliedLevel = level;
+        evaluate();
+    }
+
+    public void detach() {
+        videoSource = null;
+        localVideoView = null;
+        videoSender = null;
+    }
+
+    private void evaluate() {
+        boolean powerSaveMode = powerManager != null && powerManager.isPowerSaveMode();
+        long nowMs = SystemClock.elapsedRealtime();
+        int level = policy.update(nowMs, thermalStatus, batteryPercent, charging, powerSaveMode);
+        if (level != appliedLevel) {
+            apply(level);
+        }
+
+        handler.removeCallbacks(pendingEvaluate);
+        long delayMs = policy.nextEvaluationDelayMs(nowMs);
+        if (started && delayMs >= 0) {
+            handler.postDelayed(pendingEvaluate, Math.max(delayMs, 1));
+        }
+    }
+
+    private void apply(int level) {
+        if (videoSource == null) return;
+        MediaGovernorPolicy.Profile profile = MediaGovernorPolicy.PROFILES[level];
+        Log.d(TAG, "Applying level " + level + ": " + profile);
+
+        // Drops frames in the source instead of restarting the camera session.
+        // Raising the rate can't exceed what the camera was started at, which
+        // catches up on the next call.
+        videoSource.adaptOutputFormat(captureWidth, captureHeight, profile.captureFps);
+        applyPreviewAndEncoder(level, false);
+        appliedLevel = level;
+    }
+
+    // fresh means newly attached targets, which start out without overrides.
+    private void applyPreviewAndEncoder(int level, boolean fresh) {
+        MediaGovernorPolicy.Profile profile = MediaGovernorPolicy.PROFILES[level];
+
+        if (localVideoView != null) {
+            if (level > 0) {
+                localVideoView.setFpsReduction(profile.previewFps);
+            } else if (!fresh) {
+                localVideoView.disableFpsReduction();
+            }
+        }
+
+        if (videoSender != null && (level > 0 || !fresh)) {
+            RtpParameters parameters = videoSender.getParameters();
+            for (RtpParameters.Encoding encoding : parameters.encodings) {
+                encoding.maxBitrateBps = profile.maxBitrateBps;
+                encoding.maxFramerate = level == 0 ? null : profile.captureFps;
+            }
+            videoSender.setParameters(parameters);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.videochat;
+
+// Decides how far to degrade media quality from thermal and battery state.
+// Has no Android dependencies and takes the clock as a parameter, so it can
+// be driven from synthetic thermal traces.
+//
+// Degrading happens one level at a time, at most every STEP_DOWN_INTERVAL_MS.
+// Restoring also happens one level at a time, but only after conditions have
+// allowed a better level for RESTORE_HOLD_MS, so a device hovering around a
+// thermal threshold doesn't flip back and forth.
+public class MediaGovernorPolicy {
+
+    // Same values as PowerManager.THERMAL_STATUS_*
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+
+    static final long STEP_DOWN_INTERVAL_MS = 5_000;
+    static final long RESTORE_HOLD_MS = 30_000;
+
+    private static final int LOW_BATTERY_PERCENT = 15;
+    private static final int CRITICAL_BATTERY_PERCENT = 5;
+
+    public static class Profile {
+        public final int captureFps;
+        public final int previewFps;
+        // null means no override, WebRTC picks the bitrate and frame rate itself
+        public final Integer maxBitrateBps;
+
+        Profile(int captureFps, int previewFps, Integer maxBitrateBps) {
+            this.captureFps = captureFps;
+            this.previewFps = previewFps;
+            this.maxBitrateBps = maxBitrateBps;
+        }
+
+        @Override
+        public String toString() {
+            return captureFps + "fps capture, " + previewFps + "fps preview, "
+                    + (maxBitrateBps == null ? "no bitrate cap" : maxBitrateBps / 1000 + "kbps");
+        }
+    }
+
+    // Level 0 is the normal 480x640@30 call quality, with no encoder caps.
+    public static final Profile[] PROFILES = {
+            new Profile(30, 30, null),
+            new Profile(24, 20, 700_000),
+            new Profile(15, 15, 400_000),
+            new Profile(10, 10, 250_000),
+    };
+
+    private int level = 0;
+    private long lastChangeMs = Long.MIN_VALUE / 2;
+    private long betterSinceMs = -1;
+    private int target = 0;
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Profile getProfile() {
+        return PROFILES[level];
+    }
+
+    // Returns the level to apply after observing the given state at nowMs.
+    public int update(long nowMs, int thermalStatus, int batteryPercent, boolean charging, boolean powerSaveMode) {
+        target = targetLevel(thermalStatus, batteryPercent, charging, powerSaveMode);
+
+        if (target > level) {
+            betterSinceMs = -1;
+            if (nowMs - lastChangeMs >= STEP_DOWN_INTERVAL_MS) {
+                level++;
+                lastChangeMs = nowMs;
+            }
+        } else if (target < level) {
+            if (betterSinceMs < 0) betterSinceMs = nowMs;
+            if (nowMs - betterSinceMs >= RESTORE_HOLD_MS && nowMs - lastChangeMs >= RESTORE_HOLD_MS) {
+                level--;
+                lastChangeMs = nowMs;
+                betterSinceMs = nowMs;
+            }
+        } else {
+            betterSinceMs = -1;
+        }
+        return level;
+    }
+
+    // How long until update() could change the level again given the last
+    // observed state, or -1 if the level already matches it.
+    public long nextEvaluationDelayMs(long nowMs) {
+        if (target > level) {
+            return Math.max(0, lastChangeMs + STEP_DOWN_INTERVAL_MS - nowMs);
+        } else if (target < level) {
+            long holdEndMs = Math.max(betterSinceMs, lastChangeMs) + RESTORE_HOLD_MS;
+            return Math.max(0, holdEndMs - nowMs);
+        }
+        return -1;
+    }
+
+    static int targetLevel(int thermalStatus, int batteryPercent, boolean charging, boolean powerSaveMode) {
+        int target;
+        if (thermalStatus >= THERMAL_SEVERE) {
+            target = 3;
+        } else if (thermalStatus == THERMAL_MODERATE) {
+            target = 2;
+        } else if (thermalStatus == THERMAL_LIGHT) {
+            target = 1;
+        } else {
+            target = 0;
+        }
+
+        if (!charging && batteryPercent >= 0) {
+            if (batteryPercent <= CRITICAL_BATTERY_PERCENT) {
+                target = Math.max(target, 2);
+            } else if (batteryPercent <= LOW_BATTERY_PERCENT) {
+                target = Math.max(target, 1);
+            }
+        }
+        if (powerSaveMode) {
+            target = Math.max(target, 1);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.videochat;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.RendererCommon;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+import java.util.Arrays;
+
+// Sits between a VideoTrack and its SurfaceViewRenderer and records what is
+// delivered to the renderer: frame interval histogram, freezes, resolution
+// changes and an estimate of frames lost upstream (gaps in frame timestamps).
+// onFrame() runs on the decoder/capture thread and must not allocate.
+// Counting covers the interval between markCallStarted() and markCallEnded().
+public class RenderStatsSink implements VideoSink, RendererCommon.RendererEvents {
+
+    private static final String TAG = "RenderStatsSink";
+
+    // Upper bounds of the frame interval histogram buckets, in ms. The last
+    // bucket catches everything above the final bound.
+    private static final long[] INTERVAL_BUCKETS_MS = {20, 40, 60, 80, 100, 150, 200, 300, 500};
+
+    // Same freeze definition as WebRTC's receive stats:
+    // interval > max(3 * average interval, average interval + 150 ms)
+    private static final long FREEZE_MIN_EXTRA_NS = 150_000_000L;
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    private final String name;
+    private final VideoSink target;
+
+    private final long[] intervalHistogram = new long[INTERVAL_BUCKETS_MS.length + 1];
+    private long startNs;
+    private long endNs = -1;
+    private long firstFrameNs = -1;
+    private long firstFrameRenderedNs = -1;
+    private long lastFrameNs = -1;
+    private long lastTimestampNs = -1;
+    private double averageIntervalNs = 0;
+    private double averageTimestampDeltaNs = 0;
+
+    private long frames = 0;
+    private long estimatedLostFrames = 0;
+    private long freezeCount = 0;
+    private long totalFreezeNs = 0;
+    private long longestFreezeNs = 0;
+    private int width = 0;
+    private int height = 0;
+    private long resolutionChanges = 0;
+
+    // For the fps shown in the status UI
+    private long windowStartNs;
+    private long windowFrames = 0;
+    private int currentFps = 0;
+
+    public RenderStatsSink(String name, VideoSink target) {
+        this.name = name;
+        this.target = target;
+        reset(System.nanoTime());
+    }
+
+    // Discards everything recorded so far, e.g. preview frames shown while
+    // still looking for a partner.
+    public void markCallStarted() {
+        reset(System.nanoTime());
+    }
+
+    // Stops the clock for the summary and counts a freeze still in progress,
+    // such as a partner whose video froze before they left.
+    public void markCallEnded() {
+        finish(System.nanoTime());
+    }
+
+    synchronized void reset(long nowNs) {
+        startNs = nowNs;
+        endNs = -1;
+        firstFrameNs = -1;
+        firstFrameRenderedNs = -1;
+        lastFrameNs = -1;
+        lastTimestampNs = -1;
+        averageIntervalNs = 0;
+        averageTimestampDeltaNs = 0;
+        frames = 0;
+        estimatedLostFrames = 0;
+        freezeCount = 0;
+        totalFreezeNs = 0;
+        longestFreezeNs = 0;
+        width = 0;
+        height = 0;
+        resolutionChanges = 0;
+        Arrays.fill(intervalHistogram, 0);
+        windowStartNs = nowNs;
+        windowFrames = 0;
+        currentFps = 0;
+    }
+
+    synchronized void finish(long nowNs) {
+        if (endNs >= 0) return;
+        endNs = nowNs;
+        if (isFreeze(nowNs)) {
+            long openFreezeNs = nowNs - lastFrameNs;
+            freezeCount++;
+            totalFreezeNs += openFreezeNs;
+            longestFreezeNs = Math.max(longestFreezeNs, openFreezeNs);
+        }
+    }
+
+    @Override
+    public void onFrame(VideoFrame frame) {
+        record(System.nanoTime(), frame.getTimestampNs(), frame.getRotatedWidth(), frame.getRotatedHeight());
+        target.onFrame(frame);
+    }
+
+    synchronized void record(long nowNs, long timestampNs, int frameWidth, int frameHeight) {
+        if (endNs >= 0) return;
+        frames++;
+        windowFrames++;
+
+        if (frameWidth != width || frameHeight != height) {
+            if (width != 0) resolutionChanges++;
+            width = frameWidth;
+            height = frameHeight;
+        }
+
+        if (lastFrameNs < 0) {
+            firstFrameNs = nowNs;
+        } else {
+            long intervalNs = nowNs - lastFrameNs;
+            intervalHistogram[bucketFor(intervalNs / 1_000_000)]++;
+
+            if (isFreeze(nowNs)) {
+                freezeCount++;
+                totalFreezeNs += intervalNs;
+                longestFreezeNs = Math.max(longestFreezeNs, intervalNs);
+            } else {
+                // Keep freezes out of the average so they don't raise the threshold
+                averageIntervalNs = averageIntervalNs == 0 ? intervalNs
+                        : averageIntervalNs + AVERAGE_WEIGHT * (intervalNs - averageIntervalNs);
+            }
+
+            long timestampDeltaNs = timestampNs - lastTimestampNs;
+            if (timestampDeltaNs > 0) {
+                if (averageTimestampDeltaNs > 0 && timestampDeltaNs > 1.5 * averageTimestampDeltaNs) {
+                    estimatedLostFrames += Math.round(timestampDeltaNs / averageTimestampDeltaNs) - 1;
+                } else {
+                    averageTimestampDeltaNs = averageTimestampDeltaNs == 0 ? timestampDeltaNs
+                            : averageTimestampDeltaNs + AVERAGE_WEIGHT * (timestampDeltaNs - averageTimestampDeltaNs);
+                }
+            }
+        }
+        lastFrameNs = nowNs;
+        lastTimestampNs = timestampNs;
+    }
+
+    // True if the time since the last frame counts as a freeze.
+    private boolean isFreeze(long nowNs) {
+        if (lastFrameNs < 0 || averageIntervalNs == 0) return false;
+        long intervalNs = nowNs - lastFrameNs;
+        return intervalNs > Math.max(3 * averageIntervalNs, averageIntervalNs + FREEZE_MIN_EXTRA_NS);
+    }
+
+    private static int bucketFor(long intervalMs) {
+        for (int i = 0; i < INTERVAL_BUCKETS_MS.length; i++) {
+            if (intervalMs <= INTERVAL_BUCKETS_MS[i]) return i;
+        }
+        return INTERVAL_BUCKETS_MS.length;
+    }
+
+    @Override
+    public synchronized void onFirstFrameRendered() {
+        firstFrameRenderedNs = System.nanoTime();
+        Log.d(TAG, name + ": first frame rendered after " + (firstFrameRenderedNs - startNs) / 1_000_000 + "ms");
+    }
+
+    @Override
+    public void onFrameResolutionChanged(int videoWidth, int videoHeight, int rotation) {
+        Log.d(TAG, name + ": resolution " + videoWidth + "x" + videoHeight + ", rotation " + rotation);
+    }
+
+    // Frames per second delivered since the previous call. Meant to be polled
+    // about once a second from the UI.
+    public synchronized int pollFps() {
+        long nowNs = System.nanoTime();
+        long elapsedNs = nowNs - windowStartNs;
+        if (elapsedNs > 0) {
+            currentFps = (int) Math.round(windowFrames * 1e9 / elapsedNs);
+        }
+        windowStartNs = nowNs;
+        windowFrames = 0;
+        return currentFps;
+    }
+
+    // True while no frame has arrived for longer than the freeze threshold.
+    public synchronized boolean isFrozen() {
+        return isFreeze(System.nanoTime());
+    }
+
+    public synchronized long getFreezeCount() {
+        return freezeCount;
+    }
+
+    synchronized long getFrames() {
+        return frames;
+    }
+
+    synchronized long getTotalFreezeNs() {
+        return totalFreezeNs;
+    }
+
+    synchronized long getEstimatedLostFrames() {
+        return estimatedLostFrames;
+    }
+
+    synchronized long getResolutionChanges() {
+        return resolutionChanges;
+    }
+
+    synchronized long[] getIntervalHistogram() {
+        return intervalHistogram.clone();
+    }
+
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            long nowNs = endNs >= 0 ? endNs : System.nanoTime();
+            long activeNs = firstFrameNs < 0 ? 0 : nowNs - firstFrameNs;
+            json.put("view", name);
+            json.put("durationMs", (nowNs - startNs) / 1_000_000);
+            json.put("firstFrameMs", firstFrameNs < 0 ? -1 : (firstFrameNs - startNs) / 1_000_000);
+            json.put("firstFrameRenderedMs", firstFrameRenderedNs < 0 ? -1 : (firstFrameRenderedNs - startNs) / 1_000_000);
+            json.put("frames", frames);
+            json.put("averageFps", activeNs > 0 ? Math.round(frames * 10e9 / activeNs) / 10.0 : 0);
+            json.put("estimatedLostFrames", estimatedLostFrames);
+            json.put("freezeCount", freezeCount);
+            json.put("totalFreezeMs", totalFreezeNs / 1_000_000);
+            json.put("longestFreezeMs", longestFreezeNs / 1_000_000);
+            json.put("resolution", width + "x" + height);
+            json.put("resolutionChanges", resolutionChanges);
+
+            JSONObject histogram = new JSONObject();
+            for (int i = 0; i < intervalHistogram.length; i++) {
+                String bucket = i < INTERVAL_BUCKETS_MS.length
+                        ? "<=" + INTERVAL_BUCKETS_MS[i] + "ms"
+                        : ">" + INTERVAL_BUCKETS_MS[INTERVAL_BUCKETS_MS.length - 1] + "ms";
+                histogram.put(bucket, intervalHistogram[i]);
+            }
+            json.put("intervalHistogram", histogram);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to build stats json", e);
+        }
+        return json;
+    }
+
+    public static JSONArray toJson(RenderStatsSink... sinks) {
+        JSONArray array = new JSONArray();
+        for (RenderStatsSink sink : sinks) {
+            if (sink != null) array.put(sink.toJson());
+        }
+        return array;
+    }
+}
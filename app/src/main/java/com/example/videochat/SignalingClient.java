@@ -177,10 +177,18 @@ public class SignalingClient {
     }
 
     public void disconnect() {
+        if (roomId != null) {
+            leaveRoom();
+            callback.onPartnerDisconnected();
+        }
+    }
+
+    // Removes the room without notifying the callback, for when the caller
+    // tears the call down itself.
+    public void leaveRoom() {
         if (roomId != null) {
             roomsRef.child(roomId).removeValue();
             Log.d(TAG, "Room removed: " + roomId);
-            callback.onPartnerDisconnected();
         }
     }
 
@@ -3,10 +3,12 @@ package com.example.videochat;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.content.Context;
+import android.content.Intent;
 import android.media.AudioManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.ImageButton;
@@ -16,6 +18,8 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.webrtc.AudioSource;
 import org.webrtc.AudioTrack;
 import org.webrtc.Camera2Capturer;
@@ -31,6 +35,7 @@ import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
 import org.webrtc.PeerConnectionFactory;
 import org.webrtc.RtpReceiver;
+import org.webrtc.RtpSender;
 import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
 import org.webrtc.SurfaceTextureHelper;
@@ -42,11 +47,15 @@ import org.webrtc.VideoTrack;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 public class VideoChatActivity extends AppCompatActivity {
 
     private static final String TAG = "VideoChatActivity";
     private static final int PERMISSION_REQUEST_CODE = 123;
+    private static final int CAPTURE_WIDTH = 480;
+    private static final int CAPTURE_HEIGHT = 640;
+    private static final long STATS_UPDATE_INTERVAL_MS = 1000;
 
     // UI Components
     private SurfaceViewRenderer localVideoView;
@@ -66,11 +75,31 @@ public class VideoChatActivity extends AppCompatActivity {
     private AudioSource localAudioSource;
     private AudioTrack localAudioTrack;
     private PeerConnection peerConnection;
+    private RtpSender videoSender;
+    private DataChannelMessenger messenger;
     private EglBase eglBase;
 
+    // Render stats, recreated for every call
+    private RenderStatsSink localStats;
+    private RenderStatsSink remoteStats;
+    private long callStartMs = 0;          // wall clock, for the summary
+    private long callStartElapsedMs = 0;   // for durations
+    private CallQualityLog callQualityLog;
+    private final Handler statsHandler = new Handler(Looper.getMainLooper());
+    private final Runnable statsUpdater = new Runnable() {
+        @Override
+        public void run() {
+            updateCallStats();
+            statsHandler.postDelayed(this, STATS_UPDATE_INTERVAL_MS);
+        }
+    };
+
     // Audio
     private AudioManager audioManager;
 
+    // Lowers capture/preview fps and bitrate when the device heats up or runs low on battery
+    private MediaGovernor mediaGovernor;
+
     // State
     private boolean isVideoEnabled = true;
     private boolean isAudioEnabled = true;
@@ -91,6 +120,11 @@ public class VideoChatActivity extends AppCompatActivity {
         // Init AudioManager
         audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
 
+        callQualityLog = new CallQualityLog(this);
+
+        mediaGovernor = new MediaGovernor(this, CAPTURE_WIDTH, CAPTURE_HEIGHT);
+        mediaGovernor.start();
+
         initViews();
         setupClickListeners();
         checkPermissions();
@@ -112,6 +146,7 @@ public class VideoChatActivity extends AppCompatActivity {
         btnEndCall.setOnClickListener(v -> endCall());
         btnToggleCamera.setOnClickListener(v -> toggleCamera());
         btnToggleMic.setOnClickListener(v -> toggleMicrophone());
+        tvTimer.setOnLongClickListener(v -> shareCallQualityLog());
     }
 
     private void checkPermissions() {
@@ -153,7 +188,7 @@ public class VideoChatActivity extends AppCompatActivity {
         localVideoSource = peerConnectionFactory.createVideoSource(videoCapturer.isScreencast());
         SurfaceTextureHelper surfaceTextureHelper = SurfaceTextureHelper.create("CaptureThread", eglBase.getEglBaseContext());
         videoCapturer.initialize(surfaceTextureHelper, this, localVideoSource.getCapturerObserver());
-        videoCapturer.startCapture(480, 640, 30);
+        videoCapturer.startCapture(CAPTURE_WIDTH, CAPTURE_HEIGHT, mediaGovernor.getCaptureFps());
 
         localVideoTrack = peerConnectionFactory.createVideoTrack("local_video_track", localVideoSource);
 
@@ -168,18 +203,21 @@ public class VideoChatActivity extends AppCompatActivity {
         localAudioTrack = peerConnectionFactory.createAudioTrack("local_audio_track", localAudioSource);
 
         // Local video view
-        localVideoView.init(eglBase.getEglBaseContext(), null);
+        localStats = new RenderStatsSink("local", localVideoView);
+        localVideoView.init(eglBase.getEglBaseContext(), localStats);
         localVideoView.setMirror(true);
         localVideoView.setEnableHardwareScaler(true); // thêm dòng này
-        localVideoTrack.addSink(localVideoView);
+        localVideoTrack.addSink(localStats);
 
         // Remote video view
-        remoteVideoView.init(eglBase.getEglBaseContext(), null);
+        remoteStats = new RenderStatsSink("remote", remoteVideoView);
+        remoteVideoView.init(eglBase.getEglBaseContext(), remoteStats);
         remoteVideoView.setMirror(false);
         remoteVideoView.setEnableHardwareScaler(true);
 
         // PeerConnection
         createPeerConnection();
+        mediaGovernor.attach(localVideoSource, localVideoView, videoSender);
 
         // Signaling
         initializeSignaling();
@@ -232,9 +270,7 @@ public class VideoChatActivity extends AppCompatActivity {
             public void onPartnerDisconnected() {
                 runOnUiThread(() -> {
                     updateStatus("Partner disconnected");
-                    isConnected = false;
-                    if (peerConnection != null) peerConnection.close();
-                    resetConnectionAndFindNewPartner();
+                    tearDownCallAndFindNewPartner();
                 });
             }
         });
@@ -282,13 +318,22 @@ public class VideoChatActivity extends AppCompatActivity {
                 if (track instanceof VideoTrack) {
                     VideoTrack remoteVideoTrack = (VideoTrack) track;
                     runOnUiThread(() -> {
-                        remoteVideoTrack.addSink(remoteVideoView);
+                        remoteVideoTrack.addSink(remoteStats);
                         updateStatus("Connected!");
                         isConnected = true;
+                        callStartMs = System.currentTimeMillis();
+                        callStartElapsedMs = SystemClock.elapsedRealtime();
+                        if (localStats != null) localStats.markCallStarted();
+                        if (remoteStats != null) remoteStats.markCallStarted();
+                        statsHandler.removeCallbacks(statsUpdater);
+                        statsHandler.post(statsUpdater);
                     });
                 }
             }
-            @Override public void onDataChannel(DataChannel dataChannel) {}
+            @Override public void onDataChannel(DataChannel dataChannel) {
+                // Our channel is negotiated out of band, so this only fires for unexpected remote channels.
+                Log.w(TAG, "Ignoring remote data channel: " + dataChannel.label());
+            }
             @Override public void onConnectionChange(PeerConnection.PeerConnectionState newState) {}
             @Override public void onSignalingChange(PeerConnection.SignalingState signalingState) {}
             @Override public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {}
@@ -302,20 +347,64 @@ public class VideoChatActivity extends AppCompatActivity {
 
         if (peerConnection != null) {
             List<String> streamIds = Collections.singletonList("local_stream");
-            peerConnection.addTrack(localVideoTrack, streamIds);
+            videoSender = peerConnection.addTrack(localVideoTrack, streamIds);
             peerConnection.addTrack(localAudioTrack, streamIds);
+
+            // Created on both sides before the offer/answer so it is part of the SDP
+            messenger = DataChannelMessenger.create(peerConnection, new DataChannelMessenger.Listener() {
+                @Override public void onOpen() { Log.d(TAG, "Messaging channel open"); }
+                @Override public void onTextMessage(String text) { updateStatus("Partner: " + text); }
+                @Override public void onReaction(int reaction) { Log.d(TAG, "Partner reaction: " + reaction); }
+                @Override public void onBye() { runOnUiThread(() -> onPartnerBye()); }
+                @Override public void onRoundTrip(long pingId, long rttNanos) { Log.d(TAG, "Data channel RTT: " + rttNanos / 1000 + "us"); }
+            });
+        }
+    }
+
+    private void onPartnerBye() {
+        // Partner skipped or hung up, don't wait for the Firebase room removal
+        if (!isConnected) return;
+        updateStatus("Partner left");
+        if (signalingClient != null) signalingClient.leaveRoom();
+        tearDownCallAndFindNewPartner();
+    }
+
+    private void tearDownCallAndFindNewPartner() {
+        isConnected = false;
+        exportCallQuality();
+        disposeMessenger();
+        if (peerConnection != null) peerConnection.close();
+        resetConnectionAndFindNewPartner();
+    }
+
+    // The bye goes out on the unordered control channel, so closing the peer
+    // connection right after doesn't leave it stuck behind buffered messages.
+    // Best effort: the Firebase room removal is still the fallback.
+    private void sendByeAndDisposeMessenger() {
+        if (messenger != null) messenger.sendBye();
+        disposeMessenger();
+    }
+
+    private void disposeMessenger() {
+        if (messenger != null) {
+            messenger.dispose();
+            messenger = null;
         }
     }
 
     private void findNextPartner() {
         updateStatus("Looking for partner...");
         isConnected = false;
+        exportCallQuality();
+        sendByeAndDisposeMessenger();
         if (signalingClient != null) signalingClient.disconnect();
         if (peerConnection != null) peerConnection.close();
         resetConnectionAndFindNewPartner();
     }
 
     private void endCall() {
+        exportCallQuality();
+        sendByeAndDisposeMessenger();
         if (signalingClient != null) signalingClient.disconnect();
         if (peerConnection != null) peerConnection.close();
         resetConnectionAndFindNewPartner();
@@ -329,6 +418,46 @@ public class VideoChatActivity extends AppCompatActivity {
         finish();
     }
 
+    private void updateCallStats() {
+        if (!isConnected || remoteStats == null) return;
+        long seconds = (SystemClock.elapsedRealtime() - callStartElapsedMs) / 1000;
+        int remoteFps = remoteStats.pollFps();
+        String quality = remoteStats.isFrozen() ? "frozen" : remoteFps + " fps";
+        tvTimer.setText(String.format(Locale.US, "%02d:%02d · %s", seconds / 60, seconds % 60, quality));
+    }
+
+    // Appends one JSON line per finished call to the call quality log
+    private void exportCallQuality() {
+        statsHandler.removeCallbacks(statsUpdater);
+        tvTimer.setText("00:00");
+        if (callStartMs == 0) return;
+
+        if (remoteStats != null) remoteStats.markCallEnded();
+        if (localStats != null) localStats.markCallEnded();
+
+        JSONObject summary = new JSONObject();
+        try {
+            summary.put("startedAt", callStartMs);
+            summary.put("durationMs", SystemClock.elapsedRealtime() - callStartElapsedMs);
+            summary.put("views", RenderStatsSink.toJson(remoteStats, localStats));
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to build call quality summary", e);
+        }
+        callStartMs = 0;
+        Log.d(TAG, "Call quality: " + summary);
+        callQualityLog.append(summary);
+    }
+
+    private boolean shareCallQualityLog() {
+        Intent intent = callQualityLog.createShareIntent();
+        if (intent == null) {
+            Toast.makeText(this, "No call quality data yet", Toast.LENGTH_SHORT).show();
+        } else {
+            startActivity(intent);
+        }
+        return true;
+    }
+
     private void toggleCamera() {
         if (videoCapturer instanceof CameraVideoCapturer) {
             ((CameraVideoCapturer) videoCapturer).switchCamera(null);
@@ -372,6 +501,9 @@ public class VideoChatActivity extends AppCompatActivity {
 
     @Override
     protected void onDestroy() {
+        exportCallQuality();
+        sendByeAndDisposeMessenger();
+        if (mediaGovernor != null) mediaGovernor.stop();
         if (videoCapturer != null) {
             try {
                 videoCapturer.stopCapture();
@@ -383,8 +515,8 @@ public class VideoChatActivity extends AppCompatActivity {
             videoCapturer.dispose();
             videoCapturer = null;
         }
-        if (localVideoTrack != null && localVideoView != null) {
-            localVideoTrack.removeSink(localVideoView);
+        if (localVideoTrack != null && localStats != null) {
+            localVideoTrack.removeSink(localStats);
         }
         if (localVideoView != null) localVideoView.release();
         if (remoteVideoView != null) remoteVideoView.release();
@@ -0,0 +1,124 @@
+package com.example.videochat;
+
+import static com.example.videochat.MediaGovernorPolicy.RESTORE_HOLD_MS;
+import static com.example.videochat.MediaGovernorPolicy.STEP_DOWN_INTERVAL_MS;
+import static com.example.videochat.MediaGovernorPolicy.THERMAL_LIGHT;
+import static com.example.videochat.MediaGovernorPolicy.THERMAL_MODERATE;
+import static com.example.videochat.MediaGovernorPolicy.THERMAL_NONE;
+import static com.example.videochat.MediaGovernorPolicy.THERMAL_SEVERE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class MediaGovernorPolicyTest {
+
+    private static final int BATTERY_FULL = 100;
+
+    private final MediaGovernorPolicy policy = new MediaGovernorPolicy();
+
+    private int thermal(long nowMs, int thermalStatus) {
+        return policy.update(nowMs, thermalStatus, BATTERY_FULL, false, false);
+    }
+
+    @Test
+    public void levelZeroHasNoBitrateCap() {
+        assertNull(MediaGovernorPolicy.PROFILES[0].maxBitrateBps);
+    }
+
+    @Test
+    public void degradesOneStepPerInterval() {
+        assertEquals(1, thermal(0, THERMAL_SEVERE));
+        assertEquals(1, thermal(STEP_DOWN_INTERVAL_MS - 1, THERMAL_SEVERE));
+        assertEquals(2, thermal(STEP_DOWN_INTERVAL_MS, THERMAL_SEVERE));
+        assertEquals(2, thermal(2 * STEP_DOWN_INTERVAL_MS - 1, THERMAL_SEVERE));
+        assertEquals(3, thermal(2 * STEP_DOWN_INTERVAL_MS, THERMAL_SEVERE));
+        assertEquals(3, thermal(10 * STEP_DOWN_INTERVAL_MS, THERMAL_SEVERE));
+    }
+
+    @Test
+    public void nextEvaluationDelayFollowsStepInterval() {
+        thermal(0, THERMAL_SEVERE);
+        assertEquals(STEP_DOWN_INTERVAL_MS - 1000, policy.nextEvaluationDelayMs(1000));
+        thermal(STEP_DOWN_INTERVAL_MS, THERMAL_SEVERE);
+        thermal(2 * STEP_DOWN_INTERVAL_MS, THERMAL_SEVERE);
+        assertEquals(-1, policy.nextEvaluationDelayMs(2 * STEP_DOWN_INTERVAL_MS));
+    }
+
+    @Test
+    public void doesNotRestoreBeforeHold() {
+        assertEquals(1, thermal(0, THERMAL_LIGHT));
+        assertEquals(1, thermal(1000, THERMAL_NONE));
+        assertEquals(RESTORE_HOLD_MS, policy.nextEvaluationDelayMs(1000));
+        assertEquals(1, thermal(1000 + RESTORE_HOLD_MS - 1, THERMAL_NONE));
+        assertEquals(0, thermal(1000 + RESTORE_HOLD_MS, THERMAL_NONE));
+    }
+
+    @Test
+    public void restoresOneStepPerHold() {
+        long t = 0;
+        for (; policy.getLevel() < 3; t += STEP_DOWN_INTERVAL_MS) {
+            thermal(t, THERMAL_SEVERE);
+        }
+        long coolAt = t;
+        assertEquals(3, thermal(coolAt, THERMAL_NONE));
+        assertEquals(2, thermal(coolAt + RESTORE_HOLD_MS, THERMAL_NONE));
+        assertEquals(2, thermal(coolAt + 2 * RESTORE_HOLD_MS - 1, THERMAL_NONE));
+        assertEquals(1, thermal(coolAt + 2 * RESTORE_HOLD_MS, THERMAL_NONE));
+        assertEquals(0, thermal(coolAt + 3 * RESTORE_HOLD_MS, THERMAL_NONE));
+    }
+
+    @Test
+    public void doesNotFlapAroundThreshold() {
+        assertEquals(1, thermal(0, THERMAL_LIGHT));
+        // Status hovers between NONE and LIGHT, never cool for a full hold
+        for (long t = 1000; t < 10 * RESTORE_HOLD_MS; t += RESTORE_HOLD_MS / 3) {
+            assertEquals(1, thermal(t, THERMAL_NONE));
+            assertEquals(1, thermal(t + RESTORE_HOLD_MS / 6, THERMAL_LIGHT));
+        }
+    }
+
+    @Test
+    public void doesNotFlapBetweenModerateAndSevere() {
+        long t = 0;
+        for (; policy.getLevel() < 2; t += STEP_DOWN_INTERVAL_MS) {
+            thermal(t, THERMAL_MODERATE);
+        }
+        // One brief SEVERE blip steps down once, then MODERATE must hold before restoring
+        assertEquals(3, thermal(t, THERMAL_SEVERE));
+        assertEquals(3, thermal(t + 1000, THERMAL_MODERATE));
+        assertEquals(3, thermal(t + RESTORE_HOLD_MS, THERMAL_MODERATE));
+        assertEquals(2, thermal(t + 1000 + RESTORE_HOLD_MS, THERMAL_MODERATE));
+        assertEquals(2, thermal(t + 10 * RESTORE_HOLD_MS, THERMAL_MODERATE));
+    }
+
+    @Test
+    public void batteryAndPowerSaveFloors() {
+        assertEquals(0, MediaGovernorPolicy.targetLevel(THERMAL_NONE, 50, false, false));
+        assertEquals(1, MediaGovernorPolicy.targetLevel(THERMAL_NONE, 15, false, false));
+        assertEquals(2, MediaGovernorPolicy.targetLevel(THERMAL_NONE, 5, false, false));
+        assertEquals(1, MediaGovernorPolicy.targetLevel(THERMAL_NONE, 50, false, true));
+        // Unknown battery level applies no floor
+        assertEquals(0, MediaGovernorPolicy.targetLevel(THERMAL_NONE, -1, false, false));
+        // Floors never lower the thermal target
+        assertEquals(3, MediaGovernorPolicy.targetLevel(THERMAL_SEVERE, 15, false, true));
+    }
+
+    @Test
+    public void criticalBatteryTrace() {
+        assertEquals(1, policy.update(0, THERMAL_NONE, 4, false, false));
+        assertEquals(2, policy.update(STEP_DOWN_INTERVAL_MS, THERMAL_NONE, 4, false, false));
+        assertEquals(2, policy.update(10 * STEP_DOWN_INTERVAL_MS, THERMAL_NONE, 4, false, false));
+    }
+
+    @Test
+    public void chargingOverridesBatteryFloors() {
+        assertEquals(0, MediaGovernorPolicy.targetLevel(THERMAL_NONE, 15, true, false));
+        assertEquals(0, MediaGovernorPolicy.targetLevel(THERMAL_NONE, 5, true, false));
+
+        assertEquals(1, policy.update(0, THERMAL_NONE, 10, false, false));
+        // Plugged in: the floor goes away and the level restores after the hold
+        assertEquals(1, policy.update(1000, THERMAL_NONE, 10, true, false));
+        assertEquals(0, policy.update(1000 + RESTORE_HOLD_MS, THERMAL_NONE, 10, true, false));
+    }
+}
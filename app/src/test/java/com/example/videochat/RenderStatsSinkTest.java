@@ -0,0 +1,122 @@
+package com.example.videochat;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RenderStatsSinkTest {
+
+    private static final long FRAME_INTERVAL_NS = 33_333_333L;
+    private static final long MS = 1_000_000L;
+
+    // Histogram bucket indexes, see RenderStatsSink.INTERVAL_BUCKETS_MS
+    private static final int BUCKET_40_MS = 1;
+    private static final int BUCKET_500_MS = 8;
+
+    private final RenderStatsSink stats = new RenderStatsSink("test", null);
+
+    // Feeds a steady 30 fps run of frames starting at startNs, returns the time of the last one.
+    private long feed(long startNs, int frames, int width, int height) {
+        long t = startNs;
+        for (int i = 0; i < frames; i++) {
+            t = startNs + i * FRAME_INTERVAL_NS;
+            stats.record(t, t, width, height);
+        }
+        return t;
+    }
+
+    @Test
+    public void steadyStreamHasNoFreezes() {
+        feed(0, 300, 480, 640);
+
+        assertEquals(300, stats.getFrames());
+        assertEquals(0, stats.getFreezeCount());
+        assertEquals(0, stats.getEstimatedLostFrames());
+        assertEquals(0, stats.getResolutionChanges());
+        long[] histogram = stats.getIntervalHistogram();
+        assertEquals(299, histogram[BUCKET_40_MS]);
+    }
+
+    @Test
+    public void singleGapCountsAsOneFreeze() {
+        long last = feed(0, 60, 480, 640);
+        long resume = last + 500 * MS;
+        feed(resume, 60, 480, 640);
+
+        assertEquals(120, stats.getFrames());
+        assertEquals(1, stats.getFreezeCount());
+        assertEquals(500 * MS, stats.getTotalFreezeNs());
+        // 500 ms at 30 fps spans 15 frame intervals, so 14 frames are missing
+        assertEquals(14, stats.getEstimatedLostFrames());
+        long[] histogram = stats.getIntervalHistogram();
+        assertEquals(1, histogram[BUCKET_500_MS]);
+        assertEquals(118, histogram[BUCKET_40_MS]);
+    }
+
+    @Test
+    public void freezeDoesNotRaiseThreshold() {
+        long last = feed(0, 60, 480, 640);
+        last = feed(last + 500 * MS, 30, 480, 640);
+        // A second, shorter stall is still above max(3 * 33 ms, 33 ms + 150 ms)
+        feed(last + 250 * MS, 30, 480, 640);
+
+        assertEquals(2, stats.getFreezeCount());
+    }
+
+    @Test
+    public void shortHiccupIsNotAFreeze() {
+        long last = feed(0, 60, 480, 640);
+        feed(last + 100 * MS, 30, 480, 640);
+
+        assertEquals(0, stats.getFreezeCount());
+    }
+
+    @Test
+    public void resolutionChangeIsCounted() {
+        long last = feed(0, 30, 480, 640);
+        last = feed(last + FRAME_INTERVAL_NS, 30, 240, 320);
+        feed(last + FRAME_INTERVAL_NS, 30, 240, 320);
+
+        assertEquals(1, stats.getResolutionChanges());
+        assertEquals(0, stats.getFreezeCount());
+    }
+
+    @Test
+    public void freezeInProgressIsCountedWhenCallEnds() {
+        long last = feed(0, 60, 480, 640);
+        stats.finish(last + 800 * MS);
+
+        assertEquals(1, stats.getFreezeCount());
+        assertEquals(800 * MS, stats.getTotalFreezeNs());
+    }
+
+    @Test
+    public void shortGapAtCallEndIsNotAFreeze() {
+        long last = feed(0, 60, 480, 640);
+        stats.finish(last + FRAME_INTERVAL_NS);
+
+        assertEquals(0, stats.getFreezeCount());
+    }
+
+    @Test
+    public void callStartDiscardsEarlierFrames() {
+        long last = feed(0, 60, 480, 640);
+        last = feed(last + 500 * MS, 30, 240, 320);
+        stats.reset(last + FRAME_INTERVAL_NS);
+        feed(last + FRAME_INTERVAL_NS, 30, 240, 320);
+
+        assertEquals(30, stats.getFrames());
+        assertEquals(0, stats.getFreezeCount());
+        assertEquals(0, stats.getResolutionChanges());
+        assertEquals(29, stats.getIntervalHistogram()[BUCKET_40_MS]);
+    }
+
+    @Test
+    public void framesAfterCallEndAreIgnored() {
+        long last = feed(0, 30, 480, 640);
+        stats.finish(last + FRAME_INTERVAL_NS);
+        feed(last + 2 * FRAME_INTERVAL_NS, 30, 480, 640);
+
+        assertEquals(30, stats.getFrames());
+    }
+}